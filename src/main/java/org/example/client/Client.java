@@ -4,18 +4,33 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.Scanner;
 
 
 public class Client {
+    static final String SERVER_HOST = "localhost";
+    static final int SERVER_PORT = 10000;
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--load")) {
+            try {
+                LoadGenerator generator = LoadGenerator.fromArgs(Arrays.copyOfRange(args, 1, args.length));
+                System.out.println(generator.run());
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println(e.getLocalizedMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
         Client client = new Client();
         client.start();
     }
 
     public void start() {
         try (
-                Socket socket = new Socket("localhost", 10000);
+                Socket socket = new Socket(SERVER_HOST, SERVER_PORT);
                 DataInputStream dis = new DataInputStream(socket.getInputStream());
                 DataOutputStream dos = new DataOutputStream(socket.getOutputStream());
                 Scanner scanner = new Scanner(System.in)
@@ -0,0 +1,141 @@
+package org.example.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Non-blocking session used by {@link LoadGenerator}. Messages use the same framing as
+ * {@link DataOutputStream#writeUTF}: an unsigned 2-byte length followed by modified UTF-8.
+ */
+class LoadConnection {
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 8192;
+
+    enum State {
+        DISCONNECTED, CONNECTING, GREETING, IDLE, ENTER_WORD, RESULT, CLOSING
+    }
+
+    State state = State.DISCONNECTED;
+    long deadline;
+    long retryAt;
+    long backoff;
+    long scheduled;
+    long sent;
+    byte[] phrase;
+    boolean attempted;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer out;
+
+    void open(Selector selector, InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connected = channel.connect(address);
+            key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            state = connected ? State.GREETING : State.CONNECTING;
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    void finishConnect() throws IOException {
+        if (channel.finishConnect()) {
+            key.interestOps(SelectionKey.OP_READ);
+            state = State.GREETING;
+        }
+    }
+
+    // Returns the complete messages received so far, or null once the server has closed the connection
+    List<String> read() throws IOException {
+        if (channel.read(in) < 0) {
+            return null;
+        }
+        List<String> messages = new ArrayList<>(1);
+        in.flip();
+        while (in.remaining() >= 2) {
+            int frameLength = 2 + Short.toUnsignedInt(in.getShort(in.position()));
+            if (in.remaining() < frameLength) {
+                break;
+            }
+            messages.add(decode(in.array(), in.position(), frameLength));
+            in.position(in.position() + frameLength);
+        }
+
+        int needed = in.remaining() >= 2 ? 2 + Short.toUnsignedInt(in.getShort(in.position())) : 2;
+        if (needed > in.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(needed);
+            bigger.put(in);
+            in = bigger;
+        } else if (!in.hasRemaining() && in.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        } else {
+            in.compact();
+        }
+        return messages;
+    }
+
+    void send(byte[] frame) throws IOException {
+        out = ByteBuffer.wrap(frame);
+        flush();
+    }
+
+    void flush() throws IOException {
+        channel.write(out);
+        if (out.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            out = null;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    void close() {
+        state = State.DISCONNECTED;
+        deadline = 0;
+        out = null;
+        in.clear();
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+            channel = null;
+        }
+    }
+
+    static byte[] frame(String message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.length() + 2);
+        try {
+            new DataOutputStream(bytes).writeUTF(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String decode(byte[] buffer, int offset, int length) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(buffer, offset, length)).readUTF();
+    }
+}
@@ -0,0 +1,618 @@
+package org.example.client;
+
+import org.example.server.Messaging;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a phrase workload against the server with an open-loop model.
+ * <p>
+ * Requests are scheduled at fixed intervals regardless of how fast the server answers
+ * and picked up by the first free session. Latency is measured from the scheduled time,
+ * not from the moment the request was sent, so time spent waiting behind a slow server
+ * is not omitted from the results.
+ * <p>
+ * All sessions are non-blocking channels served by a single selector thread, so thousands
+ * of them cost a socket and a small buffer each rather than a thread.
+ */
+public class LoadGenerator {
+    private static final String PHRASE_PATTERN = "^[a-zA-Z ]+$";
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long MAX_SELECT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long INDEX_POLL_MS = 500;
+
+    private final String host;
+    private final int port;
+    private final int sessions;
+    private final double rate;
+    private final long durationSeconds;
+    private final int indexingThreads;
+    private final long indexingTimeoutSeconds;
+    private final int ioTimeoutMs;
+    private final int maxConnecting;
+    private final List<String> phrases;
+
+    public LoadGenerator(
+            String host, int port, int sessions, double rate, long durationSeconds,
+            int indexingThreads, long indexingTimeoutSeconds, int ioTimeoutMs, int maxConnecting,
+            List<String> phrases
+    ) {
+        if (sessions <= 0 || rate <= 0 || durationSeconds <= 0 || indexingTimeoutSeconds <= 0) {
+            throw new IllegalArgumentException("sessions, rate, duration and index-timeout must be > 0");
+        }
+        if (ioTimeoutMs <= 0 || maxConnecting <= 0) {
+            throw new IllegalArgumentException("io-timeout and max-connecting must be > 0");
+        }
+        if (indexingThreads < 0) {
+            throw new IllegalArgumentException("index-threads must be >= 0");
+        }
+        if (phrases.isEmpty()) {
+            throw new IllegalArgumentException("Workload doesn't contain any phrases");
+        }
+        for (String phrase : phrases) {
+            if (!phrase.matches(PHRASE_PATTERN)) {
+                throw new IllegalArgumentException(
+                        "Workload phrase '" + phrase + "' must contain only letters and spaces"
+                );
+            }
+        }
+        this.host = host;
+        this.port = port;
+        this.sessions = sessions;
+        this.rate = rate;
+        this.durationSeconds = durationSeconds;
+        this.indexingThreads = indexingThreads;
+        this.indexingTimeoutSeconds = indexingTimeoutSeconds;
+        this.ioTimeoutMs = ioTimeoutMs;
+        this.maxConnecting = maxConnecting;
+        this.phrases = phrases;
+    }
+
+    public static LoadGenerator fromArgs(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        if (!options.containsKey("workload")) {
+            throw new IllegalArgumentException("--workload <file with one phrase per line> is required");
+        }
+
+        List<String> phrases = Files.readAllLines(Path.of(options.get("workload"))).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .toList();
+
+        return new LoadGenerator(
+                options.getOrDefault("host", Client.SERVER_HOST),
+                Integer.parseInt(options.getOrDefault("port", String.valueOf(Client.SERVER_PORT))),
+                Integer.parseInt(options.getOrDefault("sessions", "100")),
+                Double.parseDouble(options.getOrDefault("rate", "100")),
+                Long.parseLong(options.getOrDefault("duration", "30")),
+                Integer.parseInt(options.getOrDefault("index-threads", "0")),
+                Long.parseLong(options.getOrDefault("index-timeout", "600")),
+                Integer.parseInt(options.getOrDefault("io-timeout", "10000")),
+                Integer.parseInt(options.getOrDefault("max-connecting", "100")),
+                phrases
+        );
+    }
+
+    public String run() throws IOException, InterruptedException {
+        Double indexingTime = indexingThreads > 0 ? index() : null;
+        try (Selector selector = Selector.open()) {
+            return new LoadRun(selector).run(indexingTime);
+        }
+    }
+
+    private Double index() throws IOException, InterruptedException {
+        Session session = new Session(host, port, ioTimeoutMs);
+        try {
+            Double time = session.index(
+                    indexingThreads, System.nanoTime() + TimeUnit.SECONDS.toNanos(indexingTimeoutSeconds)
+            );
+            session.close();
+            return time;
+        } catch (IOException | InterruptedException e) {
+            session.abort();
+            throw e;
+        }
+    }
+
+    private String report(
+            long total, long rampNanos, long elapsedNanos, Double indexingTime, Recorder recorder
+    ) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"sessions\": ").append(sessions).append(",\n");
+        sb.append("  \"targetRate\": ").append(format(rate)).append(",\n");
+        sb.append("  \"durationSeconds\": ").append(durationSeconds).append(",\n");
+        sb.append("  \"indexingThreads\": ").append(indexingThreads).append(",\n");
+        sb.append("  \"indexingTimeMs\": ").append(indexingTime == null ? "null" : format(indexingTime)).append(",\n");
+        sb.append("  \"rampSeconds\": ").append(format(rampNanos / 1e9)).append(",\n");
+        sb.append("  \"requests\": {")
+                .append("\"scheduled\": ").append(total)
+                .append(", \"ok\": ").append(recorder.count)
+                .append(", \"busy\": ").append(recorder.busy)
+                .append(", \"timeout\": ").append(recorder.timeout)
+                .append(", \"invalid\": ").append(recorder.invalid)
+                .append(", \"error\": ").append(recorder.error)
+                .append(", \"unsent\": ").append(recorder.unsent)
+                .append("},\n");
+        sb.append("  \"connections\": {")
+                .append("\"rejected\": ").append(recorder.rejectedConnections)
+                .append(", \"failed\": ").append(recorder.failedConnections)
+                .append("},\n");
+        sb.append("  \"elapsedSeconds\": ").append(format(elapsedSeconds)).append(",\n");
+        sb.append("  \"throughput\": ").append(format(recorder.count / elapsedSeconds)).append(",\n");
+        sb.append("  \"latencyMs\": ").append(percentiles(recorder.latencies, recorder.count)).append(",\n");
+        sb.append("  \"serviceTimeMs\": ").append(percentiles(recorder.serviceTimes, recorder.count)).append("\n");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static String percentiles(long[] values, int count) {
+        if (count == 0) {
+            return "null";
+        }
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (long value : sorted) {
+            sum += value;
+        }
+        return "{\"mean\": " + format(sum / count / 1e6)
+                + ", \"p50\": " + format(percentile(sorted, 0.50))
+                + ", \"p90\": " + format(percentile(sorted, 0.90))
+                + ", \"p99\": " + format(percentile(sorted, 0.99))
+                + ", \"p999\": " + format(percentile(sorted, 0.999))
+                + ", \"max\": " + format(sorted[count - 1] / 1e6) + "}";
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Event loop of one load test. Connections are opened at most {@code maxConnecting} at a
+     * time, so a burst doesn't overflow the server's accept backlog, and every connection
+     * attempt and request is bounded by the I/O timeout.
+     */
+    private class LoadRun {
+        private final Selector selector;
+        private final InetSocketAddress address = new InetSocketAddress(host, port);
+        private final long ioTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ioTimeoutMs);
+        private final LoadConnection[] connections = new LoadConnection[sessions];
+        private final PriorityQueue<LoadConnection> toConnect =
+                new PriorityQueue<>(Comparator.comparingLong((LoadConnection c) -> c.retryAt));
+        private final ArrayDeque<LoadConnection> idle = new ArrayDeque<>();
+        private final ArrayDeque<Long> pending = new ArrayDeque<>();
+        private final Recorder recorder = new Recorder();
+        private final byte[] queryFrame = LoadConnection.frame("1");
+        private final byte[] disconnectFrame = LoadConnection.frame("4");
+        private final byte[][] phraseFrames;
+        private final long total = (long) Math.ceil(rate * durationSeconds);
+        private final long intervalNanos = (long) (1e9 / rate);
+        private long startTime;
+        private long nextRequest;
+        private boolean running;
+        private int opening;
+        private int inFlight;
+        private int attempted;
+        private long lastTimeoutScan;
+
+        LoadRun(Selector selector) {
+            this.selector = selector;
+            this.phraseFrames = phrases.stream().map(LoadConnection::frame).toArray(byte[][]::new);
+            for (int i = 0; i < sessions; i++) {
+                LoadConnection connection = new LoadConnection();
+                connection.backoff = MIN_BACKOFF_NANOS;
+                connections[i] = connection;
+                toConnect.add(connection);
+            }
+        }
+
+        String run(Double indexingTime) throws IOException {
+            long rampStart = System.nanoTime();
+            while (attempted < sessions) {
+                step();
+            }
+
+            startTime = System.nanoTime();
+            running = true;
+            long drainDeadline = 0;
+            long now = startTime;
+            while (nextRequest < total || !pending.isEmpty() || inFlight > 0) {
+                if (nextRequest == total && drainDeadline == 0) {
+                    drainDeadline = now + ioTimeoutNanos;
+                }
+                if (drainDeadline != 0 && now - drainDeadline > 0) {
+                    break;
+                }
+                step();
+                now = System.nanoTime();
+            }
+            long elapsed = System.nanoTime() - startTime;
+            running = false;
+
+            recorder.unsent += pending.size();
+            pending.clear();
+            disconnect();
+            return report(total, startTime - rampStart, elapsed, indexingTime, recorder);
+        }
+
+        private void step() throws IOException {
+            long now = System.nanoTime();
+            if (running) {
+                while (nextRequest < total && startTime + nextRequest * intervalNanos - now <= 0) {
+                    pending.add(nextRequest++);
+                }
+            }
+            while (opening < maxConnecting && !toConnect.isEmpty() && toConnect.peek().retryAt - now <= 0) {
+                open(toConnect.poll(), now);
+            }
+            while (running && !pending.isEmpty() && !idle.isEmpty()) {
+                startRequest(idle.poll(), pending.poll());
+            }
+            if (now - lastTimeoutScan > MAX_SELECT_NANOS) {
+                expire(now);
+                lastTimeoutScan = now;
+            }
+
+            long wait = MAX_SELECT_NANOS;
+            if (running && nextRequest < total) {
+                wait = Math.min(wait, startTime + nextRequest * intervalNanos - now);
+            }
+            if (opening < maxConnecting && !toConnect.isEmpty()) {
+                wait = Math.min(wait, toConnect.peek().retryAt - now);
+            }
+            if (wait <= 0) {
+                selector.selectNow();
+            } else {
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait + 999_999)));
+            }
+
+            for (SelectionKey key : selector.selectedKeys()) {
+                LoadConnection connection = (LoadConnection) key.attachment();
+                try {
+                    if (key.isValid() && key.isConnectable()) {
+                        connection.finishConnect();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        List<String> messages = connection.read();
+                        if (messages == null) {
+                            lost(connection);
+                        } else {
+                            for (String message : messages) {
+                                if (connection.state == LoadConnection.State.DISCONNECTED) {
+                                    break;
+                                }
+                                handle(connection, message);
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    lost(connection);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+
+        private void open(LoadConnection connection, long now) {
+            try {
+                connection.open(selector, address);
+                connection.deadline = now + ioTimeoutNanos;
+                opening++;
+            } catch (IOException e) {
+                recorder.failedConnections++;
+                markAttempted(connection);
+                reconnectLater(connection);
+            }
+        }
+
+        private void handle(LoadConnection connection, String message) throws IOException {
+            switch (connection.state) {
+                case GREETING -> {
+                    if (message.equals(Messaging.CONNECTIONS_EXHAUSTED.get())) {
+                        connectFailed(connection, true);
+                        return;
+                    }
+                    opening--;
+                    markAttempted(connection);
+                    connection.backoff = MIN_BACKOFF_NANOS;
+                    connection.state = LoadConnection.State.IDLE;
+                    connection.deadline = 0;
+                    idle.add(connection);
+                }
+                case ENTER_WORD -> {
+                    if (!message.equals(Messaging.ENTER_WORD.get())) {
+                        requestFailed(connection);
+                        return;
+                    }
+                    connection.state = LoadConnection.State.RESULT;
+                    connection.send(connection.phrase);
+                }
+                case RESULT -> {
+                    long received = System.nanoTime();
+                    if (message.equals(Messaging.SERVER_BUSY.get())) {
+                        recorder.busy++;
+                    } else if (message.equals(Messaging.QUERY_TIMEOUT.get())) {
+                        recorder.timeout++;
+                    } else if (message.startsWith(Messaging.WRONG_INPUT.get())) {
+                        recorder.invalid++;
+                    } else if (message.contains("Disconnected")) {
+                        requestFailed(connection);
+                        return;
+                    } else {
+                        recorder.record(received - connection.scheduled, received - connection.sent);
+                    }
+                    inFlight--;
+                    connection.state = LoadConnection.State.IDLE;
+                    connection.deadline = 0;
+                    idle.add(connection);
+                }
+                case CLOSING -> connection.close();
+                default -> {
+                    // e.g. the server dropped an idle session, open a new one
+                    idle.remove(connection);
+                    reconnectLater(connection);
+                }
+            }
+        }
+
+        private void startRequest(LoadConnection connection, long request) {
+            long now = System.nanoTime();
+            connection.scheduled = startTime + request * intervalNanos;
+            connection.sent = now;
+            connection.deadline = now + ioTimeoutNanos;
+            connection.phrase = phraseFrames[(int) (request % phraseFrames.length)];
+            connection.state = LoadConnection.State.ENTER_WORD;
+            inFlight++;
+            try {
+                connection.send(queryFrame);
+            } catch (IOException e) {
+                requestFailed(connection);
+            }
+        }
+
+        private void expire(long now) {
+            for (LoadConnection connection : connections) {
+                if (connection.deadline != 0 && now - connection.deadline > 0) {
+                    lost(connection);
+                }
+            }
+        }
+
+        private void lost(LoadConnection connection) {
+            switch (connection.state) {
+                case CONNECTING, GREETING -> connectFailed(connection, false);
+                case ENTER_WORD, RESULT -> requestFailed(connection);
+                case IDLE -> {
+                    idle.remove(connection);
+                    reconnectLater(connection);
+                }
+                default -> connection.close();
+            }
+        }
+
+        private void connectFailed(LoadConnection connection, boolean rejected) {
+            opening--;
+            if (rejected) {
+                recorder.rejectedConnections++;
+            } else {
+                recorder.failedConnections++;
+            }
+            markAttempted(connection);
+            reconnectLater(connection);
+        }
+
+        private void requestFailed(LoadConnection connection) {
+            recorder.error++;
+            inFlight--;
+            reconnectLater(connection);
+        }
+
+        // Exponential backoff, so a full server isn't hammered with a new connection on every request
+        private void reconnectLater(LoadConnection connection) {
+            connection.close();
+            connection.retryAt = System.nanoTime() + connection.backoff;
+            connection.backoff = Math.min(connection.backoff * 2, MAX_BACKOFF_NANOS);
+            toConnect.add(connection);
+        }
+
+        private void markAttempted(LoadConnection connection) {
+            if (!connection.attempted) {
+                connection.attempted = true;
+                attempted++;
+            }
+        }
+
+        private void disconnect() throws IOException {
+            toConnect.clear();
+            long deadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+            int closing = 0;
+            for (LoadConnection connection : connections) {
+                if (connection.state == LoadConnection.State.IDLE) {
+                    try {
+                        connection.state = LoadConnection.State.CLOSING;
+                        connection.send(disconnectFrame);
+                        closing++;
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                } else if (connection.state == LoadConnection.State.ENTER_WORD
+                        || connection.state == LoadConnection.State.RESULT) {
+                    recorder.error++;
+                    connection.close();
+                } else {
+                    connection.close();
+                }
+            }
+            inFlight = 0;
+            idle.clear();
+
+            while (closing > 0 && System.nanoTime() - deadline < 0) {
+                step();
+                closing = 0;
+                for (LoadConnection connection : connections) {
+                    if (connection.state == LoadConnection.State.CLOSING) {
+                        closing++;
+                    }
+                }
+            }
+            for (LoadConnection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private static class RejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Recorder {
+        long[] latencies = new long[1024];
+        long[] serviceTimes = new long[1024];
+        int count;
+        int busy;
+        int timeout;
+        int invalid;
+        int error;
+        int unsent;
+        int rejectedConnections;
+        int failedConnections;
+
+        void record(long latency, long serviceTime) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+                serviceTimes = Arrays.copyOf(serviceTimes, count * 2);
+            }
+            latencies[count] = latency;
+            serviceTimes[count] = serviceTime;
+            count++;
+        }
+    }
+
+    private static class Session implements Closeable {
+        private final Socket socket;
+        private final DataInputStream dis;
+        private final DataOutputStream dos;
+        private final int timeoutMs;
+
+        Session(String host, int port, int timeoutMs) throws IOException {
+            this.socket = new Socket();
+            this.timeoutMs = timeoutMs;
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeoutMs);
+                socket.setSoTimeout(timeoutMs);
+                this.dis = new DataInputStream(socket.getInputStream());
+                this.dos = new DataOutputStream(socket.getOutputStream());
+                String greeting = dis.readUTF();
+                if (greeting.equals(Messaging.CONNECTIONS_EXHAUSTED.get())) {
+                    throw new RejectedException(greeting);
+                }
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        // Triggers indexing unless the index is ready, retrying if another client's indexing run fails
+        Double index(int threads, long deadline) throws IOException, InterruptedException {
+            while (true) {
+                String status = request("2", deadline);
+                if (status.equals(Messaging.INDEX_READY.get())) {
+                    return null;
+                }
+                if (status.equals(Messaging.INDEX_NOT_READY.get())) {
+                    String response = request("1", deadline);
+                    if (response.equals(Messaging.REQUIRE_INDEXING.get())) {
+                        response = request(String.valueOf(threads), deadline);
+                        if (!response.startsWith(Messaging.EXECUTION_TIME.get())) {
+                            throw new IOException("Indexing failed: " + response);
+                        }
+                        return Double.parseDouble(response.substring(Messaging.EXECUTION_TIME.get().length()));
+                    }
+                    if (response.equals(Messaging.ENTER_WORD.get())) {
+                        // the index became ready in between and the server now waits for a phrase
+                        request("a", deadline);
+                        return null;
+                    }
+                }
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IOException("Index wasn't ready within the indexing timeout");
+                }
+                Thread.sleep(INDEX_POLL_MS);
+            }
+        }
+
+        private String request(String message, long deadline) throws IOException {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                throw new IOException("Index wasn't ready within the indexing timeout");
+            }
+            socket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+            try {
+                dos.writeUTF(message);
+                return dis.readUTF();
+            } catch (SocketTimeoutException e) {
+                throw new IOException("Index wasn't ready within the indexing timeout", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try (socket) {
+                socket.setSoTimeout(timeoutMs);
+                dos.writeUTF("4");
+                dis.readUTF();
+            } catch (IOException ignored) {
+                // the server may already have dropped the connection
+            }
+        }
+
+        // Drops the connection without the disconnect command, the server may be waiting for other input
+        void abort() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+    }
+}
@@ -1,55 +1,74 @@
 package org.example.indexer;
 
-import org.example.indexer.entities.CustomThreadSafeMap;
 import org.example.indexer.entities.Position;
+import org.example.indexer.storage.HeapIndexStorage;
+import org.example.indexer.storage.IndexStorage;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-public class InvertedIndex {
-    private final CustomThreadSafeMap<String, Position> index;
+public class InvertedIndex implements AutoCloseable {
+    private final IndexStorage storage;
 
     public InvertedIndex() {
-        this.index = new CustomThreadSafeMap<>();
+        this(new HeapIndexStorage());
+    }
+
+    public InvertedIndex(IndexStorage storage) {
+        this.storage = storage;
     }
 
     public void addWord(String word, String filename, int position) {
-        Position pos = index.computeIfAbsent(word, k -> new Position());
-        List<Integer> positions = pos.getMap().computeIfAbsent(filename, k -> new ArrayList<>());
-        positions.add(position);
+        storage.add(word, filename, position);
     }
 
-    public Position getPositions(String phrase) {
+    public Position getPositions(String phrase, long timeout, TimeUnit unit) throws TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
         List<String> words = Arrays.stream(phrase.split("\\W"))
                 .filter(str -> !str.isEmpty())
                 .map(String::toLowerCase)
                 .toList();
-        return searchPhraseRecursive(words, 0);
+        return searchPhraseRecursive(words, 0, deadline);
     }
 
     public void clear() {
-        index.clear();
+        storage.clear();
     }
 
-    private Position searchPhraseRecursive(List<String> words, int index) {
+    public long offHeapBytes() {
+        return storage.offHeapBytes();
+    }
+
+    @Override
+    public void close() {
+        storage.close();
+    }
+
+    private Position searchPhraseRecursive(List<String> words, int index, long deadline) throws TimeoutException {
+        checkDeadline(deadline);
         if (index == words.size() - 1) {
-            return getPositionsForWord(words.get(index));
+            return getPositionsForWord(words.get(index), deadline);
         } else {
-            Position currentPositions = getPositionsForWord(words.get(index));
-            Position remainingPositions = searchPhraseRecursive(words, index + 1);
-            return mergePositions(currentPositions, remainingPositions);
+            Position currentPositions = getPositionsForWord(words.get(index), deadline);
+            Position remainingPositions = searchPhraseRecursive(words, index + 1, deadline);
+            return mergePositions(currentPositions, remainingPositions, deadline);
         }
     }
 
-    private Position getPositionsForWord(String word) {
-        return index.getOrDefault(word, new Position());
+    private Position getPositionsForWord(String word, long deadline) throws TimeoutException {
+        Position positions = storage.get(word, deadline);
+        checkDeadline(deadline);
+        return positions;
     }
 
-    private Position mergePositions(Position positions1, Position positions2) {
+    private Position mergePositions(Position positions1, Position positions2, long deadline) throws TimeoutException {
         Position result = new Position();
         for (Map.Entry<String, List<Integer>> entry : positions1.getMap().entrySet()) {
+            checkDeadline(deadline);
             String word = entry.getKey();
             if (positions2.getMap().containsKey(word)) {
                 List<Integer> mergedList = new ArrayList<>();
@@ -76,4 +95,10 @@ public class InvertedIndex {
         }
         return result;
     }
+
+    private void checkDeadline(long deadline) throws TimeoutException {
+        if (System.nanoTime() - deadline > 0) {
+            throw new TimeoutException("Phrase search exceeded its deadline");
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package org.example.indexer.storage;
+
+import org.example.indexer.entities.CustomThreadSafeMap;
+import org.example.indexer.entities.Position;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class HeapIndexStorage implements IndexStorage {
+    private final CustomThreadSafeMap<String, Position> index;
+
+    public HeapIndexStorage() {
+        this.index = new CustomThreadSafeMap<>();
+    }
+
+    @Override
+    public void add(String word, String filename, int position) {
+        Position pos = index.computeIfAbsent(word, k -> new Position());
+        List<Integer> positions = pos.getMap().computeIfAbsent(filename, k -> new ArrayList<>());
+        positions.add(position);
+    }
+
+    @Override
+    public Position get(String word, long deadline) {
+        return index.getOrDefault(word, new Position());
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+    }
+
+    @Override
+    public void close() {
+        index.clear();
+    }
+}
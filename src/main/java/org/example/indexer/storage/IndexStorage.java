@@ -0,0 +1,21 @@
+package org.example.indexer.storage;
+
+import org.example.indexer.entities.Position;
+
+import java.util.concurrent.TimeoutException;
+
+public interface IndexStorage extends AutoCloseable {
+    void add(String word, String filename, int position);
+
+    // deadline is a System.nanoTime() value after which the lookup gives up
+    Position get(String word, long deadline) throws TimeoutException;
+
+    void clear();
+
+    default long offHeapBytes() {
+        return 0;
+    }
+
+    @Override
+    void close();
+}
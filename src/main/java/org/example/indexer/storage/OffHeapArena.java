@@ -0,0 +1,113 @@
+package org.example.indexer.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Bump allocator over direct buffer slabs. Addresses encode the slab index in the
+ * upper 32 bits and the offset inside the slab in the lower 32 bits; address 0 is
+ * never handed out so it can be used as a null reference.
+ * <p>
+ * Slabs are direct buffers, so they count against {@code -XX:MaxDirectMemorySize} and their
+ * native memory is returned only once the garbage collector has cleaned up the dropped buffers.
+ */
+public class OffHeapArena {
+    private static final int DEFAULT_SLAB_SIZE = 1 << 24;
+    private static final int RESERVED_BYTES = Long.BYTES;
+
+    private final int slabSize;
+    private volatile ByteBuffer[] slabs;
+    private int currentSlab;
+    private int offset;
+
+    public OffHeapArena() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    public OffHeapArena(int slabSize) {
+        this.slabSize = slabSize;
+        this.slabs = new ByteBuffer[]{ByteBuffer.allocateDirect(slabSize)};
+        this.currentSlab = 0;
+        this.offset = RESERVED_BYTES;
+    }
+
+    public synchronized long allocate(int size) {
+        if (size > slabSize) {
+            throw new IllegalArgumentException("Allocation of " + size + " bytes exceeds slab size " + slabSize);
+        }
+        if (slabs.length == 0) {
+            throw new IllegalStateException("Arena is closed");
+        }
+        if (offset + size > slabSize) {
+            currentSlab++;
+            offset = 0;
+            if (currentSlab == slabs.length) {
+                ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+                grown[currentSlab] = ByteBuffer.allocateDirect(slabSize);
+                slabs = grown;
+            }
+        }
+        long address = ((long) currentSlab << 32) | offset;
+        offset += size;
+        return address;
+    }
+
+    public int getInt(long address) {
+        return slab(address).getInt(offset(address));
+    }
+
+    public void putInt(long address, int value) {
+        slab(address).putInt(offset(address), value);
+    }
+
+    public long getLong(long address) {
+        return slab(address).getLong(offset(address));
+    }
+
+    public void putLong(long address, long value) {
+        slab(address).putLong(offset(address), value);
+    }
+
+    public void putBytes(long address, byte[] bytes) {
+        slab(address).put(offset(address), bytes);
+    }
+
+    public boolean bytesEqual(long address, int length, byte[] bytes) {
+        if (length != bytes.length) {
+            return false;
+        }
+        ByteBuffer slab = slab(address);
+        int start = offset(address);
+        for (int i = 0; i < length; i++) {
+            if (slab.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized long reservedBytes() {
+        return (long) slabs.length * slabSize;
+    }
+
+    // Keeps the slabs for reuse by the next indexing run
+    public synchronized void reset() {
+        currentSlab = 0;
+        offset = RESERVED_BYTES;
+    }
+
+    // Drops every slab, the native memory is freed by the next GC that collects them; the arena is unusable afterwards
+    public synchronized void close() {
+        slabs = new ByteBuffer[0];
+        currentSlab = 0;
+        offset = slabSize;
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+}
@@ -0,0 +1,300 @@
+package org.example.indexer.storage;
+
+import org.example.indexer.entities.Position;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the term table and the postings outside of the Java heap.
+ * <p>
+ * The term table is split into lock stripes, each one an open addressing table in its own
+ * direct buffer. A slot points to the term bytes and to a chain of posting blocks, both
+ * allocated in an {@link OffHeapArena}. A block holds positions of a single file and
+ * blocks of the same file double in capacity, so frequent terms need few links.
+ */
+public class OffHeapIndexStorage implements IndexStorage {
+    private static final int STRIPES = 256;
+    private static final int INITIAL_SLOTS = 64;
+    private static final double LOAD_FACTOR_THRESHOLD = 0.75;
+
+    private static final int SLOT_TERM_ADDRESS = 0;
+    private static final int SLOT_HEAD = 8;
+    private static final int SLOT_TAIL = 16;
+    private static final int SLOT_HASH = 24;
+    private static final int SLOT_TERM_LENGTH = 28;
+    private static final int SLOT_SIZE = 32;
+
+    private static final int BLOCK_NEXT = 0;
+    private static final int BLOCK_FILE_ID = 8;
+    private static final int BLOCK_CAPACITY = 12;
+    private static final int BLOCK_COUNT = 16;
+    private static final int BLOCK_HEADER = 20;
+    private static final int MIN_BLOCK_CAPACITY = 2;
+    private static final int MAX_BLOCK_CAPACITY = 1024;
+    private static final int BLOCKS_PER_DEADLINE_CHECK = 64;
+
+    private final OffHeapArena arena;
+    private final ReentrantReadWriteLock[] locks;
+    private final ByteBuffer[] tables;
+    private final int[] sizes;
+    private final ConcurrentHashMap<String, Integer> fileIds;
+    private final List<String> fileNames;
+
+    public OffHeapIndexStorage() {
+        this(new OffHeapArena());
+    }
+
+    public OffHeapIndexStorage(OffHeapArena arena) {
+        this.arena = arena;
+        this.locks = new ReentrantReadWriteLock[STRIPES];
+        this.tables = new ByteBuffer[STRIPES];
+        this.sizes = new int[STRIPES];
+        this.fileIds = new ConcurrentHashMap<>();
+        this.fileNames = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+            tables[i] = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_SIZE);
+        }
+    }
+
+    @Override
+    public void add(String word, String filename, int position) {
+        int fileId = fileId(filename);
+        byte[] term = word.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(word);
+        int stripe = hash & (STRIPES - 1);
+
+        Lock writeLock = locks[stripe].writeLock();
+        writeLock.lock();
+
+        try {
+            if (tables[stripe] == null) {
+                throw new IllegalStateException("Index storage is closed");
+            }
+            if (needsResize(stripe)) {
+                resize(stripe);
+            }
+
+            ByteBuffer table = tables[stripe];
+            int slot = findSlot(table, hash, term) * SLOT_SIZE;
+            long tail;
+            if (table.getLong(slot + SLOT_TERM_ADDRESS) == 0) {
+                long termAddress = arena.allocate(term.length);
+                arena.putBytes(termAddress, term);
+                tail = allocateBlock(fileId, MIN_BLOCK_CAPACITY);
+
+                table.putLong(slot + SLOT_TERM_ADDRESS, termAddress);
+                table.putLong(slot + SLOT_HEAD, tail);
+                table.putLong(slot + SLOT_TAIL, tail);
+                table.putInt(slot + SLOT_HASH, hash);
+                table.putInt(slot + SLOT_TERM_LENGTH, term.length);
+                sizes[stripe]++;
+            } else {
+                tail = table.getLong(slot + SLOT_TAIL);
+                int capacity = arena.getInt(tail + BLOCK_CAPACITY);
+                boolean sameFile = arena.getInt(tail + BLOCK_FILE_ID) == fileId;
+                if (!sameFile || arena.getInt(tail + BLOCK_COUNT) == capacity) {
+                    long block = allocateBlock(
+                            fileId, sameFile ? Math.min(capacity * 2, MAX_BLOCK_CAPACITY) : MIN_BLOCK_CAPACITY
+                    );
+                    arena.putLong(tail + BLOCK_NEXT, block);
+                    table.putLong(slot + SLOT_TAIL, block);
+                    tail = block;
+                }
+            }
+
+            int count = arena.getInt(tail + BLOCK_COUNT);
+            arena.putInt(tail + BLOCK_HEADER + (long) count * Integer.BYTES, position);
+            arena.putInt(tail + BLOCK_COUNT, count + 1);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Position get(String word, long deadline) throws TimeoutException {
+        Position result = new Position();
+        byte[] term = word.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(word);
+        int stripe = hash & (STRIPES - 1);
+
+        Lock readLock = locks[stripe].readLock();
+        readLock.lock();
+
+        try {
+            ByteBuffer table = tables[stripe];
+            if (table == null) {
+                return result;
+            }
+            int slot = findSlot(table, hash, term) * SLOT_SIZE;
+            if (table.getLong(slot + SLOT_TERM_ADDRESS) == 0) {
+                return result;
+            }
+
+            long block = table.getLong(slot + SLOT_HEAD);
+            int lastFileId = -1;
+            List<Integer> positions = null;
+            int blocks = 0;
+            while (block != 0) {
+                if (++blocks % BLOCKS_PER_DEADLINE_CHECK == 0 && System.nanoTime() - deadline > 0) {
+                    throw new TimeoutException("Posting lookup exceeded its deadline");
+                }
+                int fileId = arena.getInt(block + BLOCK_FILE_ID);
+                if (fileId != lastFileId) {
+                    positions = result.getMap().computeIfAbsent(fileNames.get(fileId), k -> new ArrayList<>());
+                    lastFileId = fileId;
+                }
+                int count = arena.getInt(block + BLOCK_COUNT);
+                for (int i = 0; i < count; i++) {
+                    positions.add(arena.getInt(block + BLOCK_HEADER + (long) i * Integer.BYTES));
+                }
+                block = arena.getLong(block + BLOCK_NEXT);
+            }
+            return result;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lockAll();
+        try {
+            resetTables();
+            arena.reset();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // Drops the tables instead of reallocating them, lookups on a closed storage find nothing.
+    // Like the tables replaced by resize() and clear(), their native memory is freed once GC collects them
+    @Override
+    public void close() {
+        lockAll();
+        try {
+            for (int i = 0; i < STRIPES; i++) {
+                tables[i] = null;
+                sizes[i] = 0;
+            }
+            fileIds.clear();
+            fileNames.clear();
+            arena.close();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public long offHeapBytes() {
+        long bytes = arena.reservedBytes();
+        for (int i = 0; i < STRIPES; i++) {
+            Lock readLock = locks[i].readLock();
+            readLock.lock();
+            try {
+                bytes += tables[i] == null ? 0 : tables[i].capacity();
+            } finally {
+                readLock.unlock();
+            }
+        }
+        return bytes;
+    }
+
+    private int fileId(String filename) {
+        Integer id = fileIds.get(filename);
+        if (id != null) {
+            return id;
+        }
+        synchronized (fileNames) {
+            return fileIds.computeIfAbsent(filename, k -> {
+                fileNames.add(k);
+                return fileNames.size() - 1;
+            });
+        }
+    }
+
+    private void resetTables() {
+        for (int i = 0; i < STRIPES; i++) {
+            tables[i] = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_SIZE);
+            sizes[i] = 0;
+        }
+        fileIds.clear();
+        fileNames.clear();
+    }
+
+    private long allocateBlock(int fileId, int capacity) {
+        long block = arena.allocate(BLOCK_HEADER + capacity * Integer.BYTES);
+        arena.putLong(block + BLOCK_NEXT, 0);
+        arena.putInt(block + BLOCK_FILE_ID, fileId);
+        arena.putInt(block + BLOCK_CAPACITY, capacity);
+        arena.putInt(block + BLOCK_COUNT, 0);
+        return block;
+    }
+
+    private int findSlot(ByteBuffer table, int hash, byte[] term) {
+        int mask = table.capacity() / SLOT_SIZE - 1;
+        int index = (hash >>> 8) & mask;
+        while (true) {
+            int slot = index * SLOT_SIZE;
+            long termAddress = table.getLong(slot + SLOT_TERM_ADDRESS);
+            if (termAddress == 0) {
+                return index;
+            }
+            if (table.getInt(slot + SLOT_HASH) == hash
+                    && arena.bytesEqual(termAddress, table.getInt(slot + SLOT_TERM_LENGTH), term)) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private boolean needsResize(int stripe) {
+        return (double) (sizes[stripe] + 1) / (tables[stripe].capacity() / SLOT_SIZE) > LOAD_FACTOR_THRESHOLD;
+    }
+
+    private void resize(int stripe) {
+        ByteBuffer oldTable = tables[stripe];
+        int oldSlots = oldTable.capacity() / SLOT_SIZE;
+        ByteBuffer newTable = ByteBuffer.allocateDirect(oldSlots * 2 * SLOT_SIZE);
+        int mask = oldSlots * 2 - 1;
+
+        for (int i = 0; i < oldSlots; i++) {
+            int oldSlot = i * SLOT_SIZE;
+            if (oldTable.getLong(oldSlot + SLOT_TERM_ADDRESS) == 0) {
+                continue;
+            }
+            int index = (oldTable.getInt(oldSlot + SLOT_HASH) >>> 8) & mask;
+            while (newTable.getLong(index * SLOT_SIZE + SLOT_TERM_ADDRESS) != 0) {
+                index = (index + 1) & mask;
+            }
+            newTable.put(index * SLOT_SIZE, oldTable, oldSlot, SLOT_SIZE);
+        }
+
+        tables[stripe] = newTable;
+    }
+
+    private void lockAll() {
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.writeLock().lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (ReentrantReadWriteLock lock : locks) {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
@@ -16,6 +16,10 @@ public enum Messaging {
     ENTER_WORD("Please enter a word/phrase"),
     DISCONNECT("Disconnected successfully!"),
     INDEXING_ERROR("Error occurred while indexing. Please try again later"),
+    SERVER_BUSY("Server is busy. Please try again later"),
+    CONNECTIONS_EXHAUSTED("Server is busy. Disconnected, please try again later"),
+    QUERY_TIMEOUT("Search took too long and was cancelled. Try a shorter or more specific phrase"),
+    IDLE_TIMEOUT("Disconnected due to inactivity"),
     WRONG_COMMAND("You submitted invalid command. Try again please"),
     WRONG_INPUT("You submitted invalid input. Input must contain "),
     WRONG_INTEGER("integer with value >= 0"),
@@ -3,16 +3,27 @@ package org.example.server;
 import org.example.indexer.Indexer;
 import org.example.indexer.InvertedIndex;
 import org.example.indexer.entities.Position;
+import org.example.indexer.storage.HeapIndexStorage;
+import org.example.indexer.storage.IndexStorage;
+import org.example.indexer.storage.OffHeapIndexStorage;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -20,8 +31,24 @@ import java.util.logging.Logger;
 public class Server {
     private static final int SERVER_PORT = 10000;
     private static final boolean setTimeout = true;
-    private final ExecutorService threadPool = Executors.newCachedThreadPool();
-    private final InvertedIndex invertedIndex = new InvertedIndex();
+    private static final String STORAGE = System.getProperty("index.storage", "heap");
+    private final int maxConnections = intProperty("server.maxConnections", 256, 1);
+    private final int backlog = intProperty("server.backlog", 1024, 1);
+    private final int maxInFlightQueries = intProperty(
+            "server.maxInFlightQueries", Runtime.getRuntime().availableProcessors() * 2, 1
+    );
+    private final int queryTimeoutMs = intProperty("server.queryTimeoutMs", 5000, 1);
+    private final int idleTimeoutMs = intProperty("server.idleTimeoutMs", 300000, 0);
+    private final int readTimeoutMs = intProperty("server.readTimeoutMs", 30000, 0);
+    private final int writeTimeoutMs = intProperty("server.writeTimeoutMs", 30000, 1);
+    private final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(
+            maxConnections, maxConnections, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>()
+    );
+    private final ScheduledThreadPoolExecutor writeWatchdog = new ScheduledThreadPoolExecutor(1);
+    private final Semaphore connectionPermits = new Semaphore(maxConnections);
+    private final Semaphore queryPermits = new Semaphore(maxInFlightQueries);
+    private final IndexStorage storage = createStorage(STORAGE);
+    private final InvertedIndex invertedIndex = new InvertedIndex(storage);
     private static final Logger logger = Logger.getLogger(Server.class.getName());
     private final AtomicBoolean isIndexed = new AtomicBoolean(false);
     private final AtomicBoolean isIndexingInProcess = new AtomicBoolean(false);
@@ -33,16 +60,31 @@ public class Server {
     }
 
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(SERVER_PORT)) {
-            logger.log(Level.INFO, "Server started on port " + SERVER_PORT);
+        threadPool.allowCoreThreadTimeOut(true);
+        writeWatchdog.setRemoveOnCancelPolicy(true);
+        try (ServerSocket serverSocket = new ServerSocket(SERVER_PORT, backlog)) {
+            logger.log(Level.INFO, "Server started on port " + SERVER_PORT + " with " + storage.getClass().getSimpleName());
             while (true) {
                 Socket clientSocket = serverSocket.accept();
+                if (!connectionPermits.tryAcquire()) {
+                    logger.log(Level.WARNING, "Client rejected, connection limit reached: " + clientSocket);
+                    reject(clientSocket);
+                    continue;
+                }
                 logger.log(Level.INFO, "Client connected: " + clientSocket);
-                threadPool.submit(() -> handleClient(clientSocket));
+                threadPool.submit(() -> {
+                    try {
+                        handleClient(clientSocket);
+                    } finally {
+                        connectionPermits.release();
+                    }
+                });
             }
         } catch (IOException e) {
             logger.log(Level.SEVERE, e.getMessage());
             threadPool.shutdownNow();
+            writeWatchdog.shutdownNow();
+            invertedIndex.close();
         }
     }
 
@@ -57,36 +99,53 @@ public class Server {
             String word;
             boolean disconnect = false;
 
-            dos.writeUTF(Messaging.OPTIONS.get());
+            write(clientSocket, dos, Messaging.OPTIONS.get());
             while (!disconnect) {
-                command = dis.readUTF();
+                command = read(clientSocket, dis, dos, idleTimeoutMs);
                 switch (command) {
                     case "1" -> {
                         if (isIndexed.get()) {
-                            dos.writeUTF(Messaging.ENTER_WORD.get());
-                            word = dis.readUTF();
+                            write(clientSocket, dos, Messaging.ENTER_WORD.get());
+                            word = read(clientSocket, dis, dos, readTimeoutMs);
                             if (!word.matches("^[a-zA-Z ]+$")) {
-                                dos.writeUTF(Messaging.WRONG_INPUT.get() + Messaging.WRONG_STRING.get());
+                                write(clientSocket, dos, Messaging.WRONG_INPUT.get() + Messaging.WRONG_STRING.get());
+                                break;
+                            }
+                            if (!queryPermits.tryAcquire()) {
+                                logger.log(Level.WARNING, "Client " + clientSocket + " query rejected, server is busy");
+                                write(clientSocket, dos, Messaging.SERVER_BUSY.get());
                                 break;
                             }
                             logger.log(Level.INFO, "Client " + clientSocket + " entered phrase: " + word);
-                            Position pos = invertedIndex.getPositions(word);
-                            dos.writeUTF(pos.toString());
+                            Position pos;
+                            try {
+                                pos = invertedIndex.getPositions(word, queryTimeoutMs, TimeUnit.MILLISECONDS);
+                            } catch (TimeoutException e) {
+                                logger.log(Level.WARNING, "Client " + clientSocket + " query timed out: " + word);
+                                write(clientSocket, dos, Messaging.QUERY_TIMEOUT.get());
+                                break;
+                            } finally {
+                                queryPermits.release();
+                            }
+                            write(clientSocket, dos, pos.toString());
                         } else {
                             boolean updated = isIndexingInProcess.compareAndSet(false, true);
                             if (updated) {
-                                dos.writeUTF(Messaging.REQUIRE_INDEXING.get());
+                                write(clientSocket, dos, Messaging.REQUIRE_INDEXING.get());
 
                                 int numberOfThreads;
                                 try {
-                                    numberOfThreads = Integer.parseInt(dis.readUTF());
+                                    numberOfThreads = Integer.parseInt(read(clientSocket, dis, dos, readTimeoutMs));
                                     if (numberOfThreads <= 0) {
-                                        dos.writeUTF(Messaging.WRONG_INPUT.get() + Messaging.WRONG_INTEGER.get());
+                                        write(clientSocket, dos, Messaging.WRONG_INPUT.get() + Messaging.WRONG_INTEGER.get());
                                         isIndexingInProcess.compareAndSet(true, false);
                                         break;
                                     }
+                                } catch (SocketTimeoutException e) {
+                                    isIndexingInProcess.compareAndSet(true, false);
+                                    throw e;
                                 } catch (Exception e) {
-                                    dos.writeUTF(Messaging.WRONG_INPUT.get() + Messaging.WRONG_INTEGER.get());
+                                    write(clientSocket, dos, Messaging.WRONG_INPUT.get() + Messaging.WRONG_INTEGER.get());
                                     isIndexingInProcess.compareAndSet(true, false);
                                     break;
                                 }
@@ -109,35 +168,119 @@ public class Server {
                                     isIndexingInProcess.compareAndSet(true, false);
 
                                     logger.log(Level.INFO, Messaging.EXECUTION_TIME.get() + time);
-                                    dos.writeUTF(Messaging.EXECUTION_TIME.get() + time);
+                                    logger.log(Level.INFO, memoryUsage());
+                                    write(clientSocket, dos, Messaging.EXECUTION_TIME.get() + time);
                                 } catch (InterruptedException | ExecutionException e) {
                                     logger.log(Level.SEVERE, e.getLocalizedMessage());
                                     invertedIndex.clear();
                                     isIndexingInProcess.compareAndSet(true, false);
-                                    dos.writeUTF(Messaging.INDEXING_ERROR.get());
+                                    write(clientSocket, dos, Messaging.INDEXING_ERROR.get());
                                 }
                             } else {
-                                dos.writeUTF(Messaging.IN_PROCESS.get());
+                                write(clientSocket, dos, Messaging.IN_PROCESS.get());
                             }
                         }
                     }
-                    case "2" -> dos.writeUTF(
+                    case "2" -> write(clientSocket, dos,
                             isIndexed.get() ? Messaging.INDEX_READY.get() :
                                     isIndexingInProcess.get() ? Messaging.IN_PROCESS.get() :
                                             Messaging.INDEX_NOT_READY.get()
                     );
-                    case "3" -> dos.writeUTF(Messaging.OPTIONS.get());
+                    case "3" -> write(clientSocket, dos, Messaging.OPTIONS.get());
                     case "4" -> {
                         disconnect = true;
-                        dos.writeUTF(Messaging.DISCONNECT.get());
+                        write(clientSocket, dos, Messaging.DISCONNECT.get());
                     }
-                    default -> dos.writeUTF(Messaging.WRONG_COMMAND.get());
+                    default -> write(clientSocket, dos, Messaging.WRONG_COMMAND.get());
                 }
             }
 
+        } catch (SocketTimeoutException e) {
+            logger.log(Level.INFO, "Client " + clientSocket + " timed out");
         } catch (IOException e) {
             logger.log(Level.SEVERE, e.getMessage());
         }
         logger.log(Level.INFO, "Client " + clientSocket + " disconnected");
     }
+
+    private String memoryUsage() {
+        Runtime runtime = Runtime.getRuntime();
+        long gcCount = 0;
+        long gcTime = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(gc.getCollectionCount(), 0);
+            gcTime += Math.max(gc.getCollectionTime(), 0);
+        }
+        return "Index memory: heap used " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024)
+                + " MB, off-heap " + invertedIndex.offHeapBytes() / (1024 * 1024)
+                + " MB; GC so far: " + gcCount + " collections, " + gcTime + " ms";
+    }
+
+    // Integer.getInteger would silently fall back to the default on a malformed value
+    private static int intProperty(String name, int defaultValue, int min) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Property " + name + " must be an integer, got '" + value + "'");
+        }
+        if (parsed < min) {
+            throw new IllegalArgumentException("Property " + name + " must be >= " + min + ", got " + parsed);
+        }
+        return parsed;
+    }
+
+    private static IndexStorage createStorage(String type) {
+        return switch (type) {
+            case "heap" -> new HeapIndexStorage();
+            case "offheap" -> new OffHeapIndexStorage();
+            default -> throw new IllegalArgumentException(
+                    "Unknown index.storage '" + type + "', expected heap or offheap"
+            );
+        };
+    }
+
+    private String read(
+            Socket clientSocket, DataInputStream dis, DataOutputStream dos, int timeout
+    ) throws IOException {
+        clientSocket.setSoTimeout(timeout);
+        try {
+            return dis.readUTF();
+        } catch (SocketTimeoutException e) {
+            write(clientSocket, dos, Messaging.IDLE_TIMEOUT.get());
+            throw e;
+        }
+    }
+
+    // Socket writes have no timeout of their own, so a client that stops reading gets its socket closed
+    private void write(Socket clientSocket, DataOutputStream dos, String message) throws IOException {
+        ScheduledFuture<?> watchdog = writeWatchdog.schedule(() -> {
+            logger.log(Level.WARNING, "Client " + clientSocket + " stopped reading responses, closing connection");
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, e.getMessage());
+            }
+        }, writeTimeoutMs, TimeUnit.MILLISECONDS);
+        try {
+            dos.writeUTF(message);
+        } finally {
+            watchdog.cancel(false);
+        }
+    }
+
+    private void reject(Socket clientSocket) {
+        try (
+                clientSocket;
+                DataOutputStream dos = new DataOutputStream(clientSocket.getOutputStream())
+        ) {
+            write(clientSocket, dos, Messaging.CONNECTIONS_EXHAUSTED.get());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage());
+        }
+    }
 }